@@ -5,6 +5,9 @@ package com.tmobile.percy;
 
 import java.io.IOException;
 import java.io.InputStream;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
 import java.util.Objects;
 
 import org.jetbrains.ide.BuiltInServerManager;
@@ -12,6 +15,8 @@ import org.jetbrains.ide.HttpRequestHandler;
 import org.jetbrains.io.FileResponses;
 import org.jetbrains.io.Responses;
 
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
 import com.intellij.openapi.diagnostic.Logger;
 import com.intellij.openapi.util.io.FileUtilRt;
 import com.intellij.util.Url;
@@ -47,6 +52,35 @@ public class HttpServer extends HttpRequestHandler {
      */
     private static final String PREFIX = "/percy/";
 
+    /**
+     * The asset manifest generated at build time, mapping asset name to fingerprinted name.
+     */
+    private static final String ASSET_MANIFEST = "/asset-manifest.json";
+
+    /**
+     * The cache control of fingerprinted assets, whose content never changes for a given name.
+     */
+    private static final String IMMUTABLE_CACHE_CONTROL = "public, max-age=31536000, immutable";
+
+    /**
+     * The cache control of other resources.
+     */
+    private static final String NO_CACHE_CONTROL = "no-cache";
+
+    /**
+     * The fingerprinted names by asset name.
+     */
+    private static final Map<String, String> FINGERPRINTED_NAMES = loadAssetManifest();
+
+    /**
+     * The asset names by fingerprinted name.
+     */
+    private static final Map<String, String> ASSET_NAMES = new HashMap<>();
+
+    static {
+        FINGERPRINTED_NAMES.forEach((name, fingerprinted) -> ASSET_NAMES.put(fingerprinted, name));
+    }
+
     /**
      * Get url to path.
      *
@@ -54,10 +88,33 @@ public class HttpServer extends HttpRequestHandler {
      * @return url to path
      */
     public static String getStaticUrl(String path) {
+        String fingerprinted = FINGERPRINTED_NAMES.get(path);
+        if (fingerprinted != null) {
+            // Fingerprinted url is kept stable (without per-call auth token) so the browser cache is reused
+            return "http://localhost:" + BuiltInServerManager.getInstance().getPort() + PREFIX + fingerprinted;
+        }
         Url url = Urls.parseEncoded("http://localhost:" + BuiltInServerManager.getInstance().getPort() + PREFIX + path);
         return BuiltInServerManager.getInstance().addAuthToken(Objects.requireNonNull(url)).toExternalForm();
     }
 
+    /**
+     * Load the asset manifest.
+     *
+     * @return fingerprinted names by asset name, empty if manifest is not bundled
+     */
+    private static Map<String, String> loadAssetManifest() {
+        try (InputStream inputStream = HttpServer.class.getResourceAsStream(ASSET_MANIFEST)) {
+            if (inputStream == null) {
+                LOG.warn(ASSET_MANIFEST + " is not found, assets are served without fingerprint");
+                return Collections.emptyMap();
+            }
+            return new ObjectMapper().readValue(inputStream, new TypeReference<Map<String, String>>() {});
+        } catch (IOException e) {
+            LOG.warn(e);
+            return Collections.emptyMap();
+        }
+    }
+
     /**
      * Check whether request is supported.
      *
@@ -104,9 +161,14 @@ public class HttpServer extends HttpRequestHandler {
      *
      * @param request      Http request
      * @param channel      Channel
-     * @param resourceName Resource name
+     * @param resourceName Resource name, or fingerprinted asset name
      */
     private static void sendResource(HttpRequest request, Channel channel, String resourceName) {
+        String assetName = ASSET_NAMES.get(resourceName);
+        boolean fingerprinted = assetName != null;
+        if (fingerprinted) {
+            resourceName = assetName;
+        }
 
         byte[] data;
         try (InputStream inputStream = HttpServer.class.getResourceAsStream("/" + resourceName)) {
@@ -126,6 +188,7 @@ public class HttpServer extends HttpRequestHandler {
         FullHttpResponse response = new DefaultFullHttpResponse(HttpVersion.HTTP_1_1, HttpResponseStatus.OK,
                 Unpooled.wrappedBuffer(data));
         response.headers().set(HttpHeaderNames.CONTENT_TYPE, FileResponses.INSTANCE.getContentType(resourceName));
+        response.headers().set(HttpHeaderNames.CACHE_CONTROL, fingerprinted ? IMMUTABLE_CACHE_CONTROL : NO_CACHE_CONTROL);
         Responses.send(response, channel, request);
     }
 
@@ -0,0 +1,291 @@
+/*
+ * Copyright (C) 2019 TopCoder Inc., All Rights Reserved.
+ */
+package com.tmobile.percy.editor;
+
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CopyOnWriteArraySet;
+
+import org.jetbrains.annotations.NotNull;
+
+import com.intellij.openapi.Disposable;
+import com.intellij.openapi.application.ApplicationManager;
+import com.intellij.openapi.components.ServiceManager;
+import com.intellij.openapi.diagnostic.Logger;
+import com.intellij.openapi.vfs.VirtualFile;
+import com.intellij.openapi.vfs.VirtualFileManager;
+import com.intellij.openapi.vfs.newvfs.BulkFileListener;
+import com.intellij.openapi.vfs.newvfs.events.VFileContentChangeEvent;
+import com.intellij.openapi.vfs.newvfs.events.VFileEvent;
+import com.intellij.openapi.vfs.newvfs.events.VFileMoveEvent;
+import com.intellij.util.messages.MessageBusConnection;
+
+/**
+ * The service that coalesces bulk VFS changes (git checkout, branch switch, external sync)
+ * and refreshes each affected percy file model, and thus its editors, once after the batch ends.
+ *
+ * @author TCSCODER
+ * @version 1.0
+ */
+public class PercyBulkChangeService implements Disposable {
+
+    /**
+     * The logger.
+     */
+    private static final Logger LOG = Logger.getInstance(PercyBulkChangeService.class);
+
+    /**
+     * The environments file name.
+     */
+    static final String ENV_FILE_NAME = "environments.yaml";
+
+    /**
+     * The percy config file name.
+     */
+    static final String PERCY_CONFIG_FILE_NAME = ".percyrc";
+
+    /**
+     * The percy file models of open editors.
+     */
+    private final Set<PercyFileModel> models = new CopyOnWriteArraySet<>();
+
+    /**
+     * The change type of an app directory, ordered by impact.
+     */
+    private enum ChangeType {
+        /**
+         * Only percy files of the app directory changed.
+         */
+        FILE,
+
+        /**
+         * The environments.yaml of the app directory changed.
+         */
+        ENVIRONMENTS,
+
+        /**
+         * The .percyrc of the directory changed, which also applies to the nested app directories.
+         */
+        PERCY_CONFIG
+    }
+
+    /**
+     * The pending app directories, mapped to their change type. Guarded by this.
+     */
+    private Map<String, ChangeType> pendingAppDirs = new HashMap<>();
+
+    /**
+     * The paths of pending changed files. Guarded by this.
+     */
+    private Set<String> pendingFiles = new HashSet<>();
+
+    /**
+     * Whether a flush is already scheduled. Guarded by this.
+     */
+    private boolean flushScheduled;
+
+    /**
+     * The Message Bus Connection instance
+     */
+    private final MessageBusConnection messageBusConnection = ApplicationManager.getApplication().getMessageBus().connect(this);
+
+    /**
+     * Constructor.
+     */
+    public PercyBulkChangeService() {
+        messageBusConnection.subscribe(VirtualFileManager.VFS_CHANGES, new BulkFileListener() {
+            @Override
+            public void before(@NotNull List<? extends VFileEvent> events) {
+                collect(events);
+            }
+
+            @Override
+            public void after(@NotNull List<? extends VFileEvent> events) {
+                // Created files can only be resolved after the batch is applied
+                collect(events);
+                scheduleFlush();
+            }
+        });
+    }
+
+    /**
+     * Get service instance.
+     *
+     * @return service instance
+     */
+    public static PercyBulkChangeService getInstance() {
+        return ServiceManager.getService(PercyBulkChangeService.class);
+    }
+
+    /**
+     * Register a file model.
+     *
+     * @param model The model
+     */
+    void register(PercyFileModel model) {
+        models.add(model);
+    }
+
+    /**
+     * Unregister a disposed file model.
+     *
+     * @param model The model
+     */
+    void unregister(PercyFileModel model) {
+        models.remove(model);
+    }
+
+    /**
+     * Check whether changes of a file are pending, in which case
+     * individual document change pushes should be skipped.
+     *
+     * @param appDir   The app directory path
+     * @param filePath The file path
+     * @return true if changes are pending; false otherwise
+     */
+    synchronized boolean isPending(String appDir, String filePath) {
+        return findChange(pendingAppDirs, pendingFiles, appDir, filePath) != null;
+    }
+
+    /**
+     * Find the change of a file. A changed environments.yaml applies to all files of the app directory,
+     * and a changed .percyrc also applies to the nested app directories.
+     *
+     * @param appDirs  The changed app directories
+     * @param files    The changed file paths
+     * @param appDir   The app directory path
+     * @param filePath The file path
+     * @return the change type, or null if file is not affected
+     */
+    private static ChangeType findChange(Map<String, ChangeType> appDirs, Set<String> files, String appDir,
+            String filePath) {
+        ChangeType changeType = appDirs.get(appDir);
+        if (changeType == ChangeType.PERCY_CONFIG || changeType == ChangeType.ENVIRONMENTS) {
+            return changeType;
+        }
+        for (Map.Entry<String, ChangeType> entry : appDirs.entrySet()) {
+            if (entry.getValue() == ChangeType.PERCY_CONFIG && appDir.startsWith(entry.getKey() + "/")) {
+                return ChangeType.PERCY_CONFIG;
+            }
+        }
+        return files.contains(filePath) ? ChangeType.FILE : null;
+    }
+
+    /**
+     * Collect app directories affected by the VFS events.
+     *
+     * @param events The VFS events
+     */
+    private void collect(List<? extends VFileEvent> events) {
+        for (VFileEvent event : events) {
+            VirtualFile file = event.getFile();
+            if (file == null || file.isDirectory() || !isPercyFile(file.getName())) {
+                continue;
+            }
+            ChangeType changeType = getChangeType(file.getName());
+            // Saving a document writes the content its editors already have,
+            // but a saved environments.yaml or .percyrc changes what the other editors render
+            if (changeType == ChangeType.FILE && event instanceof VFileContentChangeEvent && event.isFromSave()) {
+                continue;
+            }
+            markPendingFile(file.getPath());
+            if (file.getParent() != null) {
+                markPending(file.getParent().getPath(), changeType);
+            }
+            if (event instanceof VFileMoveEvent) {
+                markPending(((VFileMoveEvent) event).getOldParent().getPath(), changeType);
+                markPending(((VFileMoveEvent) event).getNewParent().getPath(), changeType);
+            }
+        }
+    }
+
+    /**
+     * Mark app directory as pending.
+     *
+     * @param appDir     The app directory path
+     * @param changeType The change type
+     */
+    private synchronized void markPending(String appDir, ChangeType changeType) {
+        pendingAppDirs.merge(appDir, changeType, (a, b) -> a.compareTo(b) >= 0 ? a : b);
+    }
+
+    /**
+     * Mark file as pending. Paths before and after a move or rename are both marked,
+     * as events are collected before and after the batch.
+     *
+     * @param filePath The file path
+     */
+    private synchronized void markPendingFile(String filePath) {
+        pendingFiles.add(filePath);
+    }
+
+    /**
+     * Schedule the flush after the current batch, once per batch.
+     */
+    private synchronized void scheduleFlush() {
+        if (flushScheduled || pendingAppDirs.isEmpty()) {
+            return;
+        }
+        flushScheduled = true;
+        ApplicationManager.getApplication().invokeLater(this::flush);
+    }
+
+    /**
+     * Refresh each affected model exactly once.
+     */
+    private void flush() {
+        Map<String, ChangeType> appDirs;
+        Set<String> files;
+        synchronized (this) {
+            appDirs = pendingAppDirs;
+            files = pendingFiles;
+            pendingAppDirs = new HashMap<>();
+            pendingFiles = new HashSet<>();
+            flushScheduled = false;
+        }
+        LOG.info("Refresh percy editors of " + appDirs.keySet());
+
+        for (PercyFileModel model : models) {
+            ChangeType changeType = findChange(appDirs, files, model.getAppDir(), model.getFile().getPath());
+            if (changeType != null) {
+                model.refresh(changeType != ChangeType.FILE);
+            }
+        }
+    }
+
+    /**
+     * Check whether file is a percy file.
+     *
+     * @param fileName The file name
+     * @return true if file is a percy file; false otherwise
+     */
+    private static boolean isPercyFile(String fileName) {
+        String name = fileName.toLowerCase();
+        return name.endsWith(".yaml") || name.endsWith(".yml") || PERCY_CONFIG_FILE_NAME.equals(name);
+    }
+
+    /**
+     * Get the change type of a changed percy file.
+     *
+     * @param fileName The file name
+     * @return the change type
+     */
+    private static ChangeType getChangeType(String fileName) {
+        if (PERCY_CONFIG_FILE_NAME.equals(fileName)) {
+            return ChangeType.PERCY_CONFIG;
+        }
+        return ENV_FILE_NAME.equals(fileName) ? ChangeType.ENVIRONMENTS : ChangeType.FILE;
+    }
+
+    /**
+     * Dispose this service.
+     */
+    @Override
+    public void dispose() {
+        models.clear();
+    }
+}
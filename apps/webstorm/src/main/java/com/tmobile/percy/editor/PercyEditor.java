@@ -5,7 +5,6 @@ package com.tmobile.percy.editor;
 
 import java.awt.Color;
 import java.beans.PropertyChangeListener;
-import java.io.File;
 import java.io.IOException;
 import java.net.URL;
 import java.util.HashMap;
@@ -20,11 +19,7 @@ import com.fasterxml.jackson.core.JsonProcessingException;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.intellij.codeHighlighting.BackgroundEditorHighlighter;
 import com.intellij.openapi.application.ApplicationManager;
-import com.intellij.openapi.command.WriteCommandAction;
 import com.intellij.openapi.diagnostic.Logger;
-import com.intellij.openapi.editor.event.DocumentEvent;
-import com.intellij.openapi.editor.event.DocumentListener;
-import com.intellij.openapi.fileEditor.FileDocumentManager;
 import com.intellij.openapi.fileEditor.FileEditor;
 import com.intellij.openapi.fileEditor.FileEditorLocation;
 import com.intellij.openapi.fileEditor.FileEditorState;
@@ -104,6 +99,11 @@ public class PercyEditor extends UserDataHolderBase implements FileEditor {
      */
     private final VirtualFile file;
 
+    /**
+     * The shared file model.
+     */
+    private final PercyFileModel model;
+
     /**
      * Whether file is modified.
      */
@@ -161,26 +161,7 @@ public class PercyEditor extends UserDataHolderBase implements FileEditor {
         // Add look and feel listener
         messageBusConnection.subscribe(LafManagerListener.TOPIC, source -> setWebStyle());
 
-        // Add document change listener
-        com.intellij.openapi.editor.Document document = FileDocumentManager.getInstance().getDocument(file);
-        if (document != null) {
-            document.addDocumentListener(new DocumentListener() {
-                @Override
-                public void documentChanged(final DocumentEvent e) {
-
-                    try {
-                        if (browser != null) {
-                            InitMessage send = new InitMessage();
-                            send.type = "PercyEditorFileChanged";
-                            send.fileContent = e.getDocument().getText();
-                            sendToJS(send);
-                        }
-                    } catch (JsonProcessingException err) {
-                        LOG.error(err);
-                    }
-                }
-            }, this);
-        }
+        model = PercyFileModelService.getInstance(project).attach(file, this);
     }
 
     /**
@@ -202,7 +183,15 @@ public class PercyEditor extends UserDataHolderBase implements FileEditor {
      * @throws JsonProcessingException if JSON error occurs
      */
     private void sendToJS(Object toSend) throws JsonProcessingException {
-        String toSendStr = mapper.writeValueAsString(toSend);
+        sendToJS(mapper.writeValueAsString(toSend));
+    }
+
+    /**
+     * Send serialized message to javascript.
+     *
+     * @param toSendStr The serialized message to send
+     */
+    void sendToJS(String toSendStr) {
         LOG.info(toSendStr);
 
         myJBCefBrowser.getCefBrowser().executeJavaScript(
@@ -212,81 +201,21 @@ public class PercyEditor extends UserDataHolderBase implements FileEditor {
         );
     }
 
-    /**
-     * The init message.
-     */
-    public class InitMessage {
-        public String type;
-        public boolean editMode;
-        public boolean envFileMode;
-        public String appName;
-        public String fileName;
-        public String pathSep;
-        public String fileContent;
-        public String envFileContent;
-        public Map<String, Object> percyConfig = new HashMap<>();
-        public Map<String, Object> appPercyConfig = new HashMap<>();
-    }
-
     /**
      * Post message.
      *
      * @param message The post message received from javascript.
      * @throws IOException if any I/O error occurs
      */
-    @SuppressWarnings("unchecked")
     public void postMessage(@Nullable JSONObject message) throws IOException {
         String type = message.getString("type");
         LOG.info(type);
 
         if ("PercyEditorInit".equalsIgnoreCase(type)) {
-
-            String envFileName = "environments.yaml";
-            InitMessage send = new InitMessage();
-            send.type = "PercyEditorRender";
-            send.editMode = true;
-            send.envFileMode = envFileName.equals(file.getName());
-            send.appName = file.getParent().getPath();
-            send.fileName = file.getName();
-            send.pathSep = File.separator;
-            send.fileContent = new String(file.contentsToByteArray());
-
-            VirtualFile envFile = file.findFileByRelativePath("../" + envFileName);
-            if (envFile != null) {
-                send.envFileContent = new String(envFile.contentsToByteArray());
-            }
-
-            send.percyConfig.put("variablePrefix", "_{");
-            send.percyConfig.put("variableSuffix", "}_");
-            send.percyConfig.put("variableNamePrefix", "$");
-            send.percyConfig.put("envVariableName", "env");
-            send.percyConfig.put("filenameRegex", "^[a-zA-Z0-9_.-]*$");
-            send.percyConfig.put("propertyNameRegex", "^[\\s]*[a-zA-Z0-9$_.-]*[\\s]*$");
-
-            VirtualFile parent = file.getParent();
-            while (parent != null) {
-                VirtualFile percyConfigFile = parent.findChild(".percyrc");
-                if (percyConfigFile != null) {
-                    Map<String, Object> pmap = send.appPercyConfig;
-                    Map<String, Object> nmap = mapper.readValue(new String(percyConfigFile.contentsToByteArray()),
-                        Map.class);
-                    nmap.putAll(pmap);
-                    send.appPercyConfig = nmap;
-                }
-                if (parent.getPath().equals(project.getBasePath())) {
-                    break;
-                }
-                parent = parent.getParent();
-            }
-
-            sendToJS(send);
+            sendToJS(model.getRenderMessage());
         } else if ("PercyEditorSave".equalsIgnoreCase(type)) {
             String fileContent = message.getString("fileContent");
-            LOG.info("Save file: " + file.getCanonicalPath());
-
-            WriteCommandAction.runWriteCommandAction(project, () -> {
-                FileDocumentManager.getInstance().getDocument(file).setText(fileContent);
-            });
+            model.save(fileContent);
             Map<String, String> send = new HashMap<>();
             send.put("type", "PercyEditorSaved");
             send.put("fileContent", fileContent);
@@ -344,6 +273,7 @@ public class PercyEditor extends UserDataHolderBase implements FileEditor {
      */
     @Override
     public void dispose() {
+        PercyFileModelService.getInstance(project).detach(model, this);
         myJBCefBrowser.getJBCefClient().removeLoadHandler(myCefLoadHandler, myJBCefBrowser.getCefBrowser());
         Disposer.dispose(myJSQuerySendMessage);
         messageBusConnection.dispose();
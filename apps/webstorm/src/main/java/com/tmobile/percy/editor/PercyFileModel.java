@@ -0,0 +1,399 @@
+/*
+ * Copyright (C) 2019 TopCoder Inc., All Rights Reserved.
+ */
+package com.tmobile.percy.editor;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CopyOnWriteArraySet;
+
+import org.jetbrains.annotations.NotNull;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.intellij.openapi.Disposable;
+import com.intellij.openapi.command.WriteCommandAction;
+import com.intellij.openapi.diagnostic.Logger;
+import com.intellij.openapi.editor.Document;
+import com.intellij.openapi.editor.event.DocumentEvent;
+import com.intellij.openapi.editor.event.DocumentListener;
+import com.intellij.openapi.fileEditor.FileDocumentManager;
+import com.intellij.openapi.project.Project;
+import com.intellij.openapi.vfs.VirtualFile;
+
+/**
+ * The document model of a percy file, shared by all percy editors (split panes, windows) opened on the file.
+ * It listens to the document once, resolves the app config once per version and app config change and fans out
+ * the serialized messages to all attached editors.
+ *
+ * @author TCSCODER
+ * @version 1.0
+ */
+public class PercyFileModel implements Disposable {
+
+    /**
+     * The logger.
+     */
+    private static final Logger LOG = Logger.getInstance(PercyFileModel.class);
+
+    /**
+     * The JSON mapper.
+     */
+    private static final ObjectMapper mapper = new ObjectMapper();
+
+    /**
+     * The project.
+     */
+    private final Project project;
+
+    /**
+     * The file.
+     */
+    private final VirtualFile file;
+
+    /**
+     * The attached editors.
+     */
+    private final Set<PercyEditor> editors = new CopyOnWriteArraySet<>();
+
+    /**
+     * The model version, increased on every document or app config change.
+     */
+    private long version;
+
+    /**
+     * The key of cached render message, made of the model version and the modification stamps
+     * of environments.yaml and .percyrc files it is rendered with.
+     */
+    private String renderMessageKey;
+
+    /**
+     * The cached serialized render message.
+     */
+    private String renderMessage;
+
+    /**
+     * The init message.
+     */
+    public static class InitMessage {
+        public String type;
+        public boolean editMode;
+        public boolean envFileMode;
+        public String appName;
+        public String fileName;
+        public String pathSep;
+        public String fileContent;
+        public String envFileContent;
+        public Map<String, Object> percyConfig = new HashMap<>();
+        public Map<String, Object> appPercyConfig = new HashMap<>();
+    }
+
+    /**
+     * Constructor.
+     *
+     * @param project The project
+     * @param file    The file
+     */
+    PercyFileModel(Project project, VirtualFile file) {
+        this.project = project;
+        this.file = file;
+
+        // Add document change listener
+        Document document = FileDocumentManager.getInstance().getDocument(file);
+        if (document != null) {
+            document.addDocumentListener(new DocumentListener() {
+                @Override
+                public void documentChanged(final DocumentEvent e) {
+                    synchronized (PercyFileModel.this) {
+                        version++;
+                    }
+                    // Bulk document updates (e.g. property refactoring) are pushed once when finished
+                    if (e.getDocument().isInBulkUpdate()) {
+                        return;
+                    }
+                    pushFileChanged(e.getDocument());
+                }
+
+                @Override
+                public void bulkUpdateFinished(@NotNull Document document) {
+                    pushFileChanged(document);
+                }
+            }, this);
+        }
+
+        PercyBulkChangeService.getInstance().register(this);
+    }
+
+    /**
+     * Get the file.
+     *
+     * @return file
+     */
+    VirtualFile getFile() {
+        return file;
+    }
+
+    /**
+     * Get the app directory of the file.
+     *
+     * @return app directory path
+     */
+    String getAppDir() {
+        return file.getParent().getPath();
+    }
+
+    /**
+     * Attach editor.
+     *
+     * @param editor The editor
+     */
+    void attach(PercyEditor editor) {
+        editors.add(editor);
+    }
+
+    /**
+     * Detach editor.
+     *
+     * @param editor The editor
+     * @return true if no editor is attached anymore; false otherwise
+     */
+    boolean detach(PercyEditor editor) {
+        editors.remove(editor);
+        return editors.isEmpty();
+    }
+
+    /**
+     * Refresh attached editors after bulk changes of the app directory.
+     *
+     * @param appConfigChanged Whether environments.yaml or .percyrc changed
+     */
+    void refresh(boolean appConfigChanged) {
+        if (!file.isValid()) {
+            return;
+        }
+        try {
+            if (!appConfigChanged) {
+                sendFileChanged(getFileContent());
+                return;
+            }
+
+            synchronized (this) {
+                version++;
+            }
+            String render = getRenderMessage();
+            String changed = null;
+            for (PercyEditor editor : editors) {
+                if (!editor.isModified()) {
+                    editor.sendToJS(render);
+                } else {
+                    if (changed == null) {
+                        changed = createFileChangedMessage(getFileContent());
+                    }
+                    editor.sendToJS(changed);
+                }
+            }
+        } catch (IOException err) {
+            LOG.error(err);
+        }
+    }
+
+    /**
+     * Save file content.
+     *
+     * @param fileContent The file content
+     */
+    void save(String fileContent) {
+        LOG.info("Save file: " + file.getCanonicalPath());
+
+        WriteCommandAction.runWriteCommandAction(project, () -> {
+            FileDocumentManager.getInstance().getDocument(file).setText(fileContent);
+        });
+    }
+
+    /**
+     * Get the serialized render message, created once per model version and app config.
+     *
+     * @return render message
+     * @throws IOException if any I/O error occurs
+     */
+    synchronized String getRenderMessage() throws IOException {
+        String key = createRenderMessageKey();
+        if (renderMessage == null || !key.equals(renderMessageKey)) {
+            renderMessage = mapper.writeValueAsString(createRenderMessage());
+            renderMessageKey = key;
+        }
+        return renderMessage;
+    }
+
+    /**
+     * Create the render message cache key. The environments.yaml and .percyrc files are other files,
+     * so their modification stamps are part of the key besides the model version.
+     *
+     * @return render message key
+     */
+    private String createRenderMessageKey() {
+        StringBuilder key = new StringBuilder().append(version);
+
+        VirtualFile envFile = file.findFileByRelativePath("../" + PercyBulkChangeService.ENV_FILE_NAME);
+        key.append('|').append(envFile != null ? envFile.getModificationStamp() : -1);
+
+        VirtualFile parent = file.getParent();
+        while (parent != null) {
+            VirtualFile percyConfigFile = parent.findChild(PercyBulkChangeService.PERCY_CONFIG_FILE_NAME);
+            if (percyConfigFile != null) {
+                key.append('|').append(percyConfigFile.getPath()).append(':')
+                    .append(percyConfigFile.getModificationStamp());
+            }
+            if (parent.getPath().equals(project.getBasePath())) {
+                break;
+            }
+            parent = parent.getParent();
+        }
+        return key.toString();
+    }
+
+    /**
+     * Push document change to all attached editors, unless it is pushed by bulk VFS change refresh.
+     *
+     * @param document The changed document
+     */
+    private void pushFileChanged(Document document) {
+        // Bulk VFS changes are pushed once by PercyBulkChangeService after the batch ends
+        if (PercyBulkChangeService.getInstance().isPending(getAppDir(), file.getPath())) {
+            return;
+        }
+        sendFileChanged(document.getText());
+    }
+
+    /**
+     * Send file changed message to all attached editors.
+     *
+     * @param fileContent The file content
+     */
+    private void sendFileChanged(String fileContent) {
+        if (editors.isEmpty()) {
+            return;
+        }
+        try {
+            String send = createFileChangedMessage(fileContent);
+            for (PercyEditor editor : editors) {
+                editor.sendToJS(send);
+            }
+        } catch (JsonProcessingException err) {
+            LOG.error(err);
+        }
+    }
+
+    /**
+     * Create serialized file changed message.
+     *
+     * @param fileContent The file content
+     * @return file changed message
+     * @throws JsonProcessingException if JSON error occurs
+     */
+    private static String createFileChangedMessage(String fileContent) throws JsonProcessingException {
+        InitMessage send = new InitMessage();
+        send.type = "PercyEditorFileChanged";
+        send.fileContent = fileContent;
+        return mapper.writeValueAsString(send);
+    }
+
+    /**
+     * Get file content, preferring the document text over the saved content.
+     *
+     * @return file content
+     * @throws IOException if any I/O error occurs
+     */
+    private String getFileContent() throws IOException {
+        Document document = FileDocumentManager.getInstance().getDocument(file);
+        if (document != null) {
+            return document.getText();
+        }
+        return new String(file.contentsToByteArray());
+    }
+
+    /**
+     * Create render message.
+     *
+     * @return render message
+     * @throws IOException if any I/O error occurs
+     */
+    private InitMessage createRenderMessage() throws IOException {
+        InitMessage send = new InitMessage();
+        send.type = "PercyEditorRender";
+        send.editMode = true;
+        send.envFileMode = PercyBulkChangeService.ENV_FILE_NAME.equals(file.getName());
+        send.appName = file.getParent().getPath();
+        send.fileName = file.getName();
+        send.pathSep = File.separator;
+        send.fileContent = getFileContent();
+
+        VirtualFile envFile = file.findFileByRelativePath("../" + PercyBulkChangeService.ENV_FILE_NAME);
+        if (envFile != null) {
+            send.envFileContent = new String(envFile.contentsToByteArray());
+        }
+
+        send.percyConfig = createPercyConfig();
+        send.appPercyConfig = loadAppPercyConfig(project, file);
+
+        return send;
+    }
+
+    /**
+     * Create the default percy config.
+     *
+     * @return default percy config
+     */
+    public static Map<String, Object> createPercyConfig() {
+        Map<String, Object> percyConfig = new HashMap<>();
+        percyConfig.put("variablePrefix", "_{");
+        percyConfig.put("variableSuffix", "}_");
+        percyConfig.put("variableNamePrefix", "$");
+        percyConfig.put("envVariableName", "env");
+        percyConfig.put("filenameRegex", "^[a-zA-Z0-9_.-]*$");
+        percyConfig.put("propertyNameRegex", "^[\\s]*[a-zA-Z0-9$_.-]*[\\s]*$");
+        return percyConfig;
+    }
+
+    /**
+     * Load the app percy config of file, merging .percyrc files up to the project base directory
+     * (the nearest one takes precedence).
+     *
+     * @param project The project
+     * @param file    The file
+     * @return app percy config
+     * @throws IOException if any I/O error occurs
+     */
+    @SuppressWarnings("unchecked")
+    public static Map<String, Object> loadAppPercyConfig(Project project, VirtualFile file) throws IOException {
+        Map<String, Object> appPercyConfig = new HashMap<>();
+        VirtualFile parent = file.getParent();
+        while (parent != null) {
+            VirtualFile percyConfigFile = parent.findChild(PercyBulkChangeService.PERCY_CONFIG_FILE_NAME);
+            if (percyConfigFile != null) {
+                Map<String, Object> pmap = appPercyConfig;
+                Map<String, Object> nmap = mapper.readValue(new String(percyConfigFile.contentsToByteArray()),
+                    Map.class);
+                nmap.putAll(pmap);
+                appPercyConfig = nmap;
+            }
+            if (parent.getPath().equals(project.getBasePath())) {
+                break;
+            }
+            parent = parent.getParent();
+        }
+        return appPercyConfig;
+    }
+
+    /**
+     * Dispose this model.
+     */
+    @Override
+    public void dispose() {
+        PercyBulkChangeService.getInstance().unregister(this);
+        editors.clear();
+    }
+}
@@ -0,0 +1,91 @@
+/*
+ * Copyright (C) 2019 TopCoder Inc., All Rights Reserved.
+ */
+package com.tmobile.percy.editor;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import com.intellij.openapi.Disposable;
+import com.intellij.openapi.components.ServiceManager;
+import com.intellij.openapi.project.Project;
+import com.intellij.openapi.util.Disposer;
+import com.intellij.openapi.vfs.VirtualFile;
+
+/**
+ * The project service that shares one percy file model per file among all percy editors of the file.
+ *
+ * @author TCSCODER
+ * @version 1.0
+ */
+public class PercyFileModelService implements Disposable {
+
+    /**
+     * The project.
+     */
+    private final Project project;
+
+    /**
+     * The models by file. Guarded by this.
+     */
+    private final Map<VirtualFile, PercyFileModel> models = new HashMap<>();
+
+    /**
+     * Constructor.
+     *
+     * @param project The project
+     */
+    public PercyFileModelService(Project project) {
+        this.project = project;
+    }
+
+    /**
+     * Get service instance.
+     *
+     * @param project The project
+     * @return service instance
+     */
+    public static PercyFileModelService getInstance(Project project) {
+        return ServiceManager.getService(project, PercyFileModelService.class);
+    }
+
+    /**
+     * Attach editor to the model of file, the model is created if absent.
+     *
+     * @param file   The file
+     * @param editor The editor
+     * @return the model
+     */
+    synchronized PercyFileModel attach(VirtualFile file, PercyEditor editor) {
+        PercyFileModel model = models.computeIfAbsent(file, f -> {
+            PercyFileModel created = new PercyFileModel(project, f);
+            Disposer.register(this, created);
+            return created;
+        });
+        model.attach(editor);
+        return model;
+    }
+
+    /**
+     * Detach editor from the model, the model is disposed once no editor is attached.
+     *
+     * @param model  The model
+     * @param editor The editor
+     */
+    synchronized void detach(PercyFileModel model, PercyEditor editor) {
+        if (model.detach(editor)) {
+            models.remove(model.getFile());
+            Disposer.dispose(model);
+        }
+    }
+
+    /**
+     * Dispose this service.
+     */
+    @Override
+    public void dispose() {
+        synchronized (this) {
+            models.clear();
+        }
+    }
+}
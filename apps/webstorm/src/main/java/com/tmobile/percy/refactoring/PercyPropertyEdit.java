@@ -0,0 +1,161 @@
+/*
+ * Copyright (C) 2019 TopCoder Inc., All Rights Reserved.
+ */
+package com.tmobile.percy.refactoring;
+
+import com.intellij.openapi.vfs.VirtualFile;
+
+/**
+ * A minimal range edit of a percy file computed by the property refactoring.
+ *
+ * @author TCSCODER
+ * @version 1.0
+ */
+public class PercyPropertyEdit {
+
+    /**
+     * The file to edit.
+     */
+    private final VirtualFile file;
+
+    /**
+     * The document modification stamp the edit is computed against.
+     */
+    private final long modificationStamp;
+
+    /**
+     * The start offset of replaced range.
+     */
+    private final int startOffset;
+
+    /**
+     * The end offset of replaced range.
+     */
+    private final int endOffset;
+
+    /**
+     * The replacement text.
+     */
+    private final String replacement;
+
+    /**
+     * The zero-based line number.
+     */
+    private final int line;
+
+    /**
+     * The line text before edit.
+     */
+    private final String before;
+
+    /**
+     * The line text after edit.
+     */
+    private final String after;
+
+    /**
+     * Constructor.
+     *
+     * @param file              The file to edit
+     * @param modificationStamp The document modification stamp
+     * @param startOffset       The start offset of replaced range
+     * @param endOffset         The end offset of replaced range
+     * @param replacement       The replacement text
+     * @param line              The zero-based line number
+     * @param before            The line text before edit
+     * @param after             The line text after edit
+     */
+    public PercyPropertyEdit(VirtualFile file, long modificationStamp, int startOffset, int endOffset,
+            String replacement, int line, String before, String after) {
+        this.file = file;
+        this.modificationStamp = modificationStamp;
+        this.startOffset = startOffset;
+        this.endOffset = endOffset;
+        this.replacement = replacement;
+        this.line = line;
+        this.before = before;
+        this.after = after;
+    }
+
+    /**
+     * Get the file to edit.
+     *
+     * @return file to edit
+     */
+    public VirtualFile getFile() {
+        return file;
+    }
+
+    /**
+     * Get the document modification stamp.
+     *
+     * @return document modification stamp
+     */
+    public long getModificationStamp() {
+        return modificationStamp;
+    }
+
+    /**
+     * Get the start offset of replaced range.
+     *
+     * @return start offset
+     */
+    public int getStartOffset() {
+        return startOffset;
+    }
+
+    /**
+     * Get the end offset of replaced range.
+     *
+     * @return end offset
+     */
+    public int getEndOffset() {
+        return endOffset;
+    }
+
+    /**
+     * Get the replacement text.
+     *
+     * @return replacement text
+     */
+    public String getReplacement() {
+        return replacement;
+    }
+
+    /**
+     * Get the zero-based line number.
+     *
+     * @return line number
+     */
+    public int getLine() {
+        return line;
+    }
+
+    /**
+     * Get the line text before edit.
+     *
+     * @return line text before edit
+     */
+    public String getBefore() {
+        return before;
+    }
+
+    /**
+     * Get the line text after edit.
+     *
+     * @return line text after edit
+     */
+    public String getAfter() {
+        return after;
+    }
+
+    /**
+     * Get the preview text.
+     *
+     * @return preview text
+     */
+    @Override
+    public String toString() {
+        return file.getName() + ":" + (line + 1) + "  " + before.trim() + "  ->  " + after.trim();
+    }
+}
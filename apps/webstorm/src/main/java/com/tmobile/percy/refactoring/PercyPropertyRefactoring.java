@@ -0,0 +1,586 @@
+/*
+ * Copyright (C) 2019 TopCoder Inc., All Rights Reserved.
+ */
+package com.tmobile.percy.refactoring;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.stream.Collectors;
+
+import com.intellij.concurrency.JobLauncher;
+import com.intellij.openapi.application.ReadAction;
+import com.intellij.openapi.command.WriteCommandAction;
+import com.intellij.openapi.editor.Document;
+import com.intellij.openapi.fileEditor.FileDocumentManager;
+import com.intellij.openapi.progress.ProgressIndicator;
+import com.intellij.openapi.project.Project;
+import com.intellij.openapi.util.Pair;
+import com.intellij.openapi.vfs.ReadonlyStatusHandler;
+import com.intellij.openapi.vfs.VirtualFile;
+import com.intellij.util.DocumentUtil;
+
+/**
+ * The cross-environment property refactoring of a percy app. It renames a property (and the references
+ * of a renamed top-level leaf property) or changes a property value in the default node and every environment node of
+ * every percy file of the app.
+ * Edits are computed per file in parallel and applied as minimal range edits in one undoable command.
+ *
+ * @author TCSCODER
+ * @version 1.0
+ */
+public class PercyPropertyRefactoring {
+
+    /**
+     * The refactoring command name.
+     */
+    public static final String COMMAND_NAME = "Refactor Percy Property";
+
+    /**
+     * The path separator of nested property keys.
+     */
+    public static final String PATH_SEPARATOR = "/";
+
+    /**
+     * The key line pattern: indent, optional sequence dash, key, and the rest after colon.
+     */
+    private static final Pattern KEY_LINE = Pattern.compile("^( *)(- +)?([a-zA-Z0-9$_.-]+):(?=\\s|$)(.*)$");
+
+    /**
+     * The value pattern: optional tag, optional anchor, and the value.
+     */
+    private static final Pattern VALUE = Pattern.compile("^\\s*(?:(!!\\w+)(?:\\s+|$))?(&\\S+\\s*)?(.*)$");
+
+    /**
+     * The valid values of scalar tags, other than string.
+     */
+    private static final Map<String, Pattern> TAG_VALUES = new HashMap<>();
+
+    static {
+        TAG_VALUES.put("!!int", Pattern.compile("^[-+]?[0-9]+$"));
+        TAG_VALUES.put("!!float", Pattern.compile("^[-+]?([0-9]+(\\.[0-9]*)?|\\.[0-9]+)([eE][-+]?[0-9]+)?$"));
+        TAG_VALUES.put("!!bool", Pattern.compile("^(true|false)$"));
+    }
+
+    /**
+     * The refactoring type.
+     */
+    public enum Type {
+        RENAME, CHANGE_VALUE
+    }
+
+    /**
+     * The refactoring type.
+     */
+    private final Type type;
+
+    /**
+     * The property path relative to the default/environment node.
+     */
+    private final List<String> path;
+
+    /**
+     * The new key name or the new value.
+     */
+    private final String newText;
+
+    /**
+     * The merged percy config of app.
+     */
+    private final Map<String, Object> percyConfig;
+
+    /**
+     * The variable reference to replace, or null if property is not renamed at top level.
+     */
+    private final String variableReference;
+
+    /**
+     * The new variable reference.
+     */
+    private final String newVariableReference;
+
+    /**
+     * The conflicts which prevent the refactoring.
+     */
+    private final List<String> conflicts = Collections.synchronizedList(new ArrayList<>());
+
+    /**
+     * A changed range of a line.
+     */
+    private static class Change {
+        private final int start;
+        private final int end;
+        private final String text;
+        private final boolean reference;
+
+        Change(int start, int end, String text, boolean reference) {
+            this.start = start;
+            this.end = end;
+            this.text = text;
+            this.reference = reference;
+        }
+    }
+
+    /**
+     * The changes of a line.
+     */
+    private static class LineChanges {
+        private final int lineStart;
+        private final int lineNumber;
+        private final String line;
+        private final List<Change> changes;
+
+        LineChanges(int lineStart, int lineNumber, String line, List<Change> changes) {
+            this.lineStart = lineStart;
+            this.lineNumber = lineNumber;
+            this.line = line;
+            this.changes = changes;
+        }
+    }
+
+    /**
+     * A key (or sequence item "-") on the path of a line.
+     */
+    private static class Node {
+        private final int indent;
+        private final String key;
+        private final int line;
+
+        Node(int indent, String key, int line) {
+            this.indent = indent;
+            this.key = key;
+            this.line = line;
+        }
+    }
+
+    /**
+     * Constructor.
+     *
+     * @param type        The refactoring type
+     * @param path        The property path, nested keys separated by {@link #PATH_SEPARATOR}
+     * @param newText     The new key name or the new value
+     * @param percyConfig The merged percy config of app
+     */
+    public PercyPropertyRefactoring(Type type, String path, String newText, Map<String, Object> percyConfig) {
+        this.type = type;
+        this.path = Arrays.asList(path.trim().split(Pattern.quote(PATH_SEPARATOR)));
+        this.newText = type == Type.RENAME ? newText.trim() : newText;
+        this.percyConfig = percyConfig;
+
+        // Every top-level leaf property can be referenced, the variable name prefix only hides it from output
+        if (type == Type.RENAME && this.path.size() == 1) {
+            String variablePrefix = getConfig("variablePrefix");
+            String variableSuffix = getConfig("variableSuffix");
+            variableReference = variablePrefix + this.path.get(0) + variableSuffix;
+            newVariableReference = variablePrefix + this.newText + variableSuffix;
+        } else {
+            variableReference = null;
+            newVariableReference = null;
+        }
+    }
+
+    /**
+     * Validate the refactoring input against the percy config.
+     *
+     * @return the error message, or null if input is valid
+     */
+    public String validate() {
+        if (type != Type.RENAME) {
+            return null;
+        }
+        if (newText.isEmpty() || !newText.matches(getConfig("propertyNameRegex"))) {
+            return "Invalid property name: " + newText;
+        }
+        if (newText.equals(path.get(path.size() - 1))) {
+            return "New name is the same as the current name: " + newText;
+        }
+        return null;
+    }
+
+    /**
+     * Get the conflicts found while computing edits, the edits must not be applied if there is any.
+     *
+     * @return conflicts
+     */
+    public List<String> getConflicts() {
+        return conflicts;
+    }
+
+    /**
+     * Compute edits of all files in parallel. Each file is only read under a short read action,
+     * and the computation is cancelled with the progress indicator.
+     *
+     * @param files     The percy files
+     * @param indicator The progress indicator
+     * @return edits ordered by file and offset
+     */
+    public List<PercyPropertyEdit> computeEdits(List<VirtualFile> files, ProgressIndicator indicator) {
+        Map<VirtualFile, List<PercyPropertyEdit>> editsByFile = new ConcurrentHashMap<>();
+        JobLauncher.getInstance().invokeConcurrentlyUnderProgress(files, indicator, file -> {
+            indicator.checkCanceled();
+            Pair<Long, String> snapshot = ReadAction.compute(() -> {
+                Document document = FileDocumentManager.getInstance().getDocument(file);
+                return document == null ? null : Pair.create(document.getModificationStamp(), document.getText());
+            });
+            if (snapshot != null) {
+                editsByFile.put(file, computeEdits(file, snapshot.first, snapshot.second));
+            }
+            return true;
+        });
+        indicator.checkCanceled();
+
+        return files.stream()
+            .filter(editsByFile::containsKey)
+            .flatMap(file -> editsByFile.get(file).stream())
+            .collect(Collectors.toList());
+    }
+
+    /**
+     * Compute edits of a file, conflicts are added to {@link #getConflicts()}. References are only renamed
+     * if the renamed property is a leaf in the file, as only leaf properties can be referenced.
+     *
+     * @param file              The file
+     * @param modificationStamp The document modification stamp
+     * @param text              The document text
+     * @return edits ordered by offset
+     */
+    List<PercyPropertyEdit> computeEdits(VirtualFile file, long modificationStamp, String text) {
+        List<LineChanges> lines = new ArrayList<>();
+        Deque<Node> stack = new ArrayDeque<>();
+        Set<String> keyPaths = new HashSet<>();
+        List<Node> renamed = new ArrayList<>();
+        List<String> renamedParents = new ArrayList<>();
+        boolean leaf = true;
+
+        int lineStart = 0;
+        int lineNumber = 0;
+        while (lineStart <= text.length()) {
+            int lineEnd = text.indexOf('\n', lineStart);
+            if (lineEnd < 0) {
+                lineEnd = text.length();
+            }
+            String line = text.substring(lineStart, lineEnd);
+            if (line.endsWith("\r")) {
+                line = line.substring(0, line.length() - 1);
+            }
+
+            List<Change> changes = computeChanges(file, lineNumber, line, stack);
+            if (!stack.isEmpty() && stack.peek().line == lineNumber && !"-".equals(stack.peek().key)) {
+                keyPaths.add(getKeyPath(stack));
+                if (type == Type.RENAME && path.equals(getRelativePath(stack))) {
+                    Node node = stack.pop();
+                    renamed.add(node);
+                    renamedParents.add(getKeyPath(stack));
+                    stack.push(node);
+
+                    Matcher matcher = KEY_LINE.matcher(line);
+                    leaf &= matcher.matches() && isLeaf(matcher.group(4));
+                }
+            }
+            if (!changes.isEmpty()) {
+                lines.add(new LineChanges(lineStart, lineNumber, line, changes));
+            }
+
+            lineStart = lineEnd + 1;
+            lineNumber++;
+        }
+
+        // Renaming must not duplicate a sibling key
+        for (int i = 0; i < renamed.size(); i++) {
+            if (keyPaths.contains(renamedParents.get(i) + PATH_SEPARATOR + newText)) {
+                conflicts.add(file.getName() + ":" + (renamed.get(i).line + 1) + " " + newText + " already exists");
+            }
+        }
+
+        boolean renameReferences = leaf && !renamed.isEmpty();
+        List<PercyPropertyEdit> edits = new ArrayList<>();
+        for (LineChanges lineChanges : lines) {
+            List<Change> changes = lineChanges.changes;
+            if (!renameReferences) {
+                changes = changes.stream().filter(change -> !change.reference).collect(Collectors.toList());
+            }
+            if (!changes.isEmpty()) {
+                edits.add(createEdit(file, modificationStamp, lineChanges.lineStart, lineChanges.lineNumber,
+                    lineChanges.line, changes));
+            }
+        }
+        return edits;
+    }
+
+    /**
+     * Check whether the value of a key line is a leaf, i.e. a scalar value or block scalar.
+     *
+     * @param rest The rest of line after colon
+     * @return true if value is a leaf; false otherwise
+     */
+    private static boolean isLeaf(String rest) {
+        Matcher matcher = VALUE.matcher(rest);
+        if (!matcher.matches()) {
+            return false;
+        }
+        String tag = matcher.group(1);
+        String value = matcher.group(3);
+        return !"!!map".equals(tag) && !"!!seq".equals(tag) && !value.isEmpty() && !value.startsWith("#")
+            && !value.startsWith("*");
+    }
+
+    /**
+     * Compute changes of a line, and track the key path of the line.
+     *
+     * @param file       The file
+     * @param lineNumber The line number
+     * @param line       The line
+     * @param stack      The key stack
+     * @return changes ordered by offset
+     */
+    private List<Change> computeChanges(VirtualFile file, int lineNumber, String line, Deque<Node> stack) {
+        String trimmed = line.trim();
+        if (trimmed.isEmpty() || trimmed.startsWith("#")) {
+            return Collections.emptyList();
+        }
+
+        int indent = line.length() - line.replaceAll("^ +", "").length();
+        while (!stack.isEmpty() && stack.peek().indent >= indent) {
+            stack.pop();
+        }
+
+        List<Change> changes = new ArrayList<>();
+        Matcher matcher = KEY_LINE.matcher(line);
+        String rest;
+        int restStart;
+        if (matcher.matches()) {
+            if (matcher.group(2) != null) {
+                stack.push(new Node(indent, "-", lineNumber));
+            }
+            String key = matcher.group(3);
+            stack.push(new Node(matcher.start(3), key, lineNumber));
+
+            if (path.equals(getRelativePath(stack))) {
+                if (type == Type.RENAME) {
+                    changes.add(new Change(matcher.start(3), matcher.end(3), newText, false));
+                } else {
+                    Change change = computeValueChange(file, lineNumber, matcher.group(4), matcher.start(4));
+                    if (change != null) {
+                        changes.add(change);
+                    }
+                }
+            }
+            rest = matcher.group(4);
+            restStart = matcher.start(4);
+        } else if (trimmed.startsWith("-")) {
+            stack.push(new Node(indent, "-", lineNumber));
+            rest = line.substring(line.indexOf('-') + 1);
+            restStart = line.indexOf('-') + 1;
+        } else {
+            rest = line;
+            restStart = 0;
+        }
+
+        if (variableReference != null) {
+            int index = rest.indexOf(variableReference);
+            while (index >= 0) {
+                changes.add(new Change(restStart + index, restStart + index + variableReference.length(),
+                    newVariableReference, true));
+                index = rest.indexOf(variableReference, index + variableReference.length());
+            }
+        }
+        changes.sort(Comparator.comparingInt(change -> change.start));
+        return changes;
+    }
+
+    /**
+     * Compute the value change of a key line, conflicts are added to {@link #getConflicts()}.
+     *
+     * @param file       The file
+     * @param lineNumber The line number
+     * @param rest       The rest of line after colon
+     * @param restStart  The start offset of rest in line
+     * @return the value change, or null if value can not be changed
+     */
+    private Change computeValueChange(VirtualFile file, int lineNumber, String rest, int restStart) {
+        String location = file.getName() + ":" + (lineNumber + 1) + " ";
+        Matcher matcher = VALUE.matcher(rest);
+        if (!matcher.matches()) {
+            conflicts.add(location + "value can not be parsed");
+            return null;
+        }
+        String tag = matcher.group(1);
+        String value = matcher.group(3);
+        if ("!!map".equals(tag) || "!!seq".equals(tag) || value.isEmpty() || value.startsWith("*")) {
+            conflicts.add(location + String.join(PATH_SEPARATOR, path) + " has children, only scalar values can be changed");
+            return null;
+        }
+        if (value.startsWith("|") || value.startsWith(">")) {
+            conflicts.add(location + String.join(PATH_SEPARATOR, path)
+                + " is a block scalar, only single-line values can be changed");
+            return null;
+        }
+        if (tag != null && !"!!str".equals(tag)) {
+            Pattern valuePattern = TAG_VALUES.get(tag);
+            if (valuePattern == null || !valuePattern.matcher(newText).matches()) {
+                conflicts.add(location + newText + " is not a valid " + tag + " value");
+                return null;
+            }
+        }
+
+        int end;
+        if (value.startsWith("\"")) {
+            end = 1;
+            while (end < value.length() && value.charAt(end) != '"') {
+                end += value.charAt(end) == '\\' ? 2 : 1;
+            }
+            end = Math.min(end + 1, value.length());
+        } else if (value.startsWith("'")) {
+            // A single quote is escaped as two single quotes
+            end = 1;
+            while (end < value.length() && (value.charAt(end) != '\'' || value.startsWith("''", end))) {
+                end += value.charAt(end) == '\'' ? 2 : 1;
+            }
+            end = Math.min(end + 1, value.length());
+        } else {
+            int comment = value.indexOf(" #");
+            end = (comment < 0 ? value : value.substring(0, comment)).replaceAll("\\s+$", "").length();
+        }
+
+        String replacement = tag == null || "!!str".equals(tag) ? quote(newText) : newText;
+        int start = restStart + matcher.start(3);
+        return new Change(start, start + end, replacement, false);
+    }
+
+    /**
+     * Get the property path relative to the default/environment node.
+     *
+     * @param stack The key stack
+     * @return relative path, or null if key is not under the default/environment node
+     */
+    private static List<String> getRelativePath(Deque<Node> stack) {
+        List<String> keys = new ArrayList<>();
+        Iterator<Node> iterator = stack.descendingIterator();
+        while (iterator.hasNext()) {
+            keys.add(iterator.next().key);
+        }
+        if (keys.size() > 1 && "default".equals(keys.get(0))) {
+            return keys.subList(1, keys.size());
+        }
+        if (keys.size() > 2 && "environments".equals(keys.get(0))) {
+            return keys.subList(2, keys.size());
+        }
+        return null;
+    }
+
+    /**
+     * Get the absolute key path of the stack, sequence items are identified by their line.
+     *
+     * @param stack The key stack
+     * @return absolute key path
+     */
+    private static String getKeyPath(Deque<Node> stack) {
+        StringBuilder keyPath = new StringBuilder();
+        Iterator<Node> iterator = stack.descendingIterator();
+        while (iterator.hasNext()) {
+            Node node = iterator.next();
+            keyPath.append(PATH_SEPARATOR).append("-".equals(node.key) ? "-" + node.line : node.key);
+        }
+        return keyPath.toString();
+    }
+
+    /**
+     * Create one minimal edit covering the changes of a line.
+     *
+     * @param file              The file
+     * @param modificationStamp The document modification stamp
+     * @param lineStart         The line start offset in document
+     * @param lineNumber        The line number
+     * @param line              The line
+     * @param changes           The changes ordered by offset
+     * @return the edit
+     */
+    private static PercyPropertyEdit createEdit(VirtualFile file, long modificationStamp, int lineStart,
+            int lineNumber, String line, List<Change> changes) {
+        int start = changes.get(0).start;
+        int end = changes.get(changes.size() - 1).end;
+
+        StringBuilder replacement = new StringBuilder();
+        int offset = start;
+        for (Change change : changes) {
+            replacement.append(line, offset, change.start).append(change.text);
+            offset = change.end;
+        }
+
+        String after = line.substring(0, start) + replacement + line.substring(end);
+        return new PercyPropertyEdit(file, modificationStamp, lineStart + start, lineStart + end,
+            replacement.toString(), lineNumber, line, after);
+    }
+
+    /**
+     * Get a percy config value.
+     *
+     * @param name The config name
+     * @return the config value
+     */
+    private String getConfig(String name) {
+        return String.valueOf(percyConfig.get(name));
+    }
+
+    /**
+     * Quote a string value.
+     *
+     * @param value The value
+     * @return the double-quoted value
+     */
+    private static String quote(String value) {
+        return "\"" + value.replace("\\", "\\\\").replace("\"", "\\\"") + "\"";
+    }
+
+    /**
+     * Apply edits in one write command, so they are undone in a single step. Each document is updated
+     * in bulk, so open percy editors receive one update per file.
+     *
+     * @param project The project
+     * @param edits   The edits
+     * @return null if edits are applied, otherwise the reason why they are not applied
+     */
+    public static String applyEdits(Project project, List<PercyPropertyEdit> edits) {
+        Map<VirtualFile, List<PercyPropertyEdit>> editsByFile = edits.stream()
+            .collect(Collectors.groupingBy(PercyPropertyEdit::getFile));
+
+        if (ReadonlyStatusHandler.getInstance(project).ensureFilesWritable(editsByFile.keySet()).hasReadonlyFiles()) {
+            return "Some files are read-only.";
+        }
+
+        FileDocumentManager documentManager = FileDocumentManager.getInstance();
+        for (Map.Entry<VirtualFile, List<PercyPropertyEdit>> entry : editsByFile.entrySet()) {
+            Document document = documentManager.getDocument(entry.getKey());
+            if (document == null || document.getModificationStamp() != entry.getValue().get(0).getModificationStamp()) {
+                return "Files changed while the refactoring was computed, please run it again.";
+            }
+        }
+
+        WriteCommandAction.writeCommandAction(project).withName(COMMAND_NAME).withGlobalUndo().run(() -> {
+            for (Map.Entry<VirtualFile, List<PercyPropertyEdit>> entry : editsByFile.entrySet()) {
+                Document document = documentManager.getDocument(entry.getKey());
+                List<PercyPropertyEdit> fileEdits = new ArrayList<>(entry.getValue());
+                // Apply from the end, so offsets of remaining edits stay valid
+                fileEdits.sort(Comparator.comparingInt(PercyPropertyEdit::getStartOffset).reversed());
+                DocumentUtil.executeInBulk(document, true, () -> {
+                    for (PercyPropertyEdit edit : fileEdits) {
+                        document.replaceString(edit.getStartOffset(), edit.getEndOffset(), edit.getReplacement());
+                    }
+                });
+            }
+        });
+        return null;
+    }
+}
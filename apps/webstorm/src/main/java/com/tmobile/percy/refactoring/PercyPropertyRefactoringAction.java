@@ -0,0 +1,152 @@
+/*
+ * Copyright (C) 2019 TopCoder Inc., All Rights Reserved.
+ */
+package com.tmobile.percy.refactoring;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+
+import org.jetbrains.annotations.NotNull;
+
+import com.intellij.openapi.actionSystem.AnAction;
+import com.intellij.openapi.actionSystem.AnActionEvent;
+import com.intellij.openapi.actionSystem.CommonDataKeys;
+import com.intellij.openapi.application.ReadAction;
+import com.intellij.openapi.diagnostic.Logger;
+import com.intellij.openapi.progress.ProgressIndicator;
+import com.intellij.openapi.progress.Task;
+import com.intellij.openapi.project.Project;
+import com.intellij.openapi.ui.Messages;
+import com.intellij.openapi.util.text.StringUtil;
+import com.intellij.openapi.vfs.VirtualFile;
+import com.tmobile.percy.PercyFileType;
+import com.tmobile.percy.editor.PercyFileModel;
+
+/**
+ * The action to rename a property or change a property value across every environment
+ * and every percy file of the app of selected file.
+ *
+ * @author TCSCODER
+ * @version 1.0
+ */
+public class PercyPropertyRefactoringAction extends AnAction {
+
+    /**
+     * The logger.
+     */
+    private static final Logger LOG = Logger.getInstance(PercyPropertyRefactoringAction.class);
+
+    /**
+     * Update action presentation, the action is available on percy files only.
+     *
+     * @param e The action event
+     */
+    @Override
+    public void update(@NotNull AnActionEvent e) {
+        VirtualFile file = e.getData(CommonDataKeys.VIRTUAL_FILE);
+        e.getPresentation().setEnabledAndVisible(e.getProject() != null && isPercyFile(file));
+    }
+
+    /**
+     * Perform action.
+     *
+     * @param e The action event
+     */
+    @Override
+    public void actionPerformed(@NotNull AnActionEvent e) {
+        Project project = e.getProject();
+        VirtualFile file = e.getData(CommonDataKeys.VIRTUAL_FILE);
+        if (project == null || !isPercyFile(file)) {
+            return;
+        }
+        VirtualFile appDir = file.getParent();
+        String title = PercyPropertyRefactoring.COMMAND_NAME;
+
+        int choice = Messages.showDialog(project,
+            "Refactor a property in every environment of every percy file of app " + appDir.getName() + ".",
+            title, new String[] { "Rename", "Change Value", Messages.CANCEL_BUTTON }, 0, Messages.getQuestionIcon());
+        if (choice != 0 && choice != 1) {
+            return;
+        }
+        PercyPropertyRefactoring.Type type = choice == 0 ? PercyPropertyRefactoring.Type.RENAME
+            : PercyPropertyRefactoring.Type.CHANGE_VALUE;
+
+        String path = Messages.showInputDialog(project,
+            "Property path (nested keys separated by \"" + PercyPropertyRefactoring.PATH_SEPARATOR + "\"):",
+            title, null);
+        if (StringUtil.isEmptyOrSpaces(path)) {
+            return;
+        }
+        String newText = Messages.showInputDialog(project,
+            type == PercyPropertyRefactoring.Type.RENAME ? "New name:" : "New value:", title, null);
+        if (newText == null) {
+            return;
+        }
+
+        new Task.Backgroundable(project, title, true) {
+            private List<PercyPropertyEdit> edits;
+
+            private String error;
+
+            @Override
+            public void run(@NotNull ProgressIndicator indicator) {
+                indicator.setIndeterminate(true);
+
+                Map<String, Object> percyConfig = PercyFileModel.createPercyConfig();
+                try {
+                    percyConfig.putAll(ReadAction.compute(() -> PercyFileModel.loadAppPercyConfig(project, file)));
+                } catch (IOException err) {
+                    LOG.warn(err);
+                }
+
+                PercyPropertyRefactoring refactoring = new PercyPropertyRefactoring(type, path, newText, percyConfig);
+                error = refactoring.validate();
+                if (error != null) {
+                    return;
+                }
+
+                List<VirtualFile> files = ReadAction.compute(() -> Arrays.stream(appDir.getChildren())
+                    .filter(PercyPropertyRefactoringAction::isPercyFile)
+                    .collect(Collectors.toList()));
+                indicator.checkCanceled();
+
+                edits = refactoring.computeEdits(files, indicator);
+                if (!refactoring.getConflicts().isEmpty()) {
+                    error = "The refactoring can not be applied:\n" + String.join("\n", refactoring.getConflicts());
+                }
+            }
+
+            @Override
+            public void onSuccess() {
+                if (error != null) {
+                    Messages.showErrorDialog(project, error, title);
+                    return;
+                }
+                if (edits.isEmpty()) {
+                    Messages.showInfoMessage(project, "No occurrence of " + path + " is found.", title);
+                    return;
+                }
+                if (new PercyRefactoringPreviewDialog(project, edits).showAndGet()) {
+                    String applyError = PercyPropertyRefactoring.applyEdits(project, edits);
+                    if (applyError != null) {
+                        Messages.showErrorDialog(project, applyError, title);
+                    }
+                }
+            }
+        }.queue();
+    }
+
+    /**
+     * Check whether file is a percy file.
+     *
+     * @param file The file
+     * @return true if file is a percy file; false otherwise
+     */
+    private static boolean isPercyFile(VirtualFile file) {
+        return file != null && !file.isDirectory() && file.getParent() != null
+            && Arrays.stream(PercyFileType.EXTENSIONS).anyMatch(ext -> ext.equalsIgnoreCase(file.getExtension()));
+    }
+}
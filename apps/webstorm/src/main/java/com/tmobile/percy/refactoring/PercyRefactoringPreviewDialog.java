@@ -0,0 +1,64 @@
+/*
+ * Copyright (C) 2019 TopCoder Inc., All Rights Reserved.
+ */
+package com.tmobile.percy.refactoring;
+
+import java.awt.BorderLayout;
+import java.awt.Dimension;
+import java.util.List;
+import javax.swing.JComponent;
+import javax.swing.JPanel;
+
+import org.jetbrains.annotations.Nullable;
+
+import com.intellij.openapi.project.Project;
+import com.intellij.openapi.ui.DialogWrapper;
+import com.intellij.ui.components.JBLabel;
+import com.intellij.ui.components.JBList;
+import com.intellij.ui.components.JBScrollPane;
+
+/**
+ * The dialog to preview the edits of a property refactoring before applying them.
+ *
+ * @author TCSCODER
+ * @version 1.0
+ */
+public class PercyRefactoringPreviewDialog extends DialogWrapper {
+
+    /**
+     * The edits to preview.
+     */
+    private final List<PercyPropertyEdit> edits;
+
+    /**
+     * Constructor.
+     *
+     * @param project The project
+     * @param edits   The edits to preview
+     */
+    public PercyRefactoringPreviewDialog(Project project, List<PercyPropertyEdit> edits) {
+        super(project);
+        this.edits = edits;
+        setTitle(PercyPropertyRefactoring.COMMAND_NAME);
+        setOKButtonText("Apply");
+        init();
+    }
+
+    /**
+     * Create center panel.
+     *
+     * @return center panel
+     */
+    @Nullable
+    @Override
+    protected JComponent createCenterPanel() {
+        long files = edits.stream().map(PercyPropertyEdit::getFile).distinct().count();
+
+        JPanel panel = new JPanel(new BorderLayout());
+        panel.add(new JBLabel(edits.size() + " change(s) in " + files + " file(s):"), BorderLayout.NORTH);
+        JBScrollPane scrollPane = new JBScrollPane(new JBList<>(edits));
+        scrollPane.setPreferredSize(new Dimension(700, 300));
+        panel.add(scrollPane, BorderLayout.CENTER);
+        return panel;
+    }
+}